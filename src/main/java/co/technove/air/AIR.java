@@ -1,12 +1,19 @@
 package co.technove.air;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 // todo probably needs lists eventually
 public class AIR {
     private final Map<String, Section> sections = new LinkedHashMap<>();
+    private final NavigableSet<String> sectionIndex = new TreeSet<>(); // names of the sections, sorted for prefix lookups
 
     private static class ManualObject {
         public final String key;
@@ -20,6 +27,8 @@ public class AIR {
 
     private static class Section extends ManualObject {
         public final Map<String, Value<?>> values;
+        public byte[] fingerprint; // hash of the text this section was read from, null if it was not read
+        public List<ValueType<?>> types; // types registered when it was read
 
         private Section(String key, List<String> comments) {
             super(key, comments);
@@ -31,10 +40,15 @@ public class AIR {
             value.parent = this;
         }
 
+        public void changed() {
+            this.fingerprint = null; // no longer what was read, so it is parsed again on reload even if its text is the same
+        }
+
         public <T> Value<T> get(String key, ValueType<T> type) {
             Value<?> val = this.values.computeIfAbsent(key, k -> {
                 Value<T> value = new Value<>(type, k, null, null);
                 value.parent = this;
+                this.changed();
                 return value;
             });
             if (val.type != type) {
@@ -46,10 +60,36 @@ public class AIR {
         }
     }
 
+    private static class SectionSource {
+        public final StringBuilder text = new StringBuilder();
+        public final MessageDigest digest;
+
+        private SectionSource() {
+            try {
+                this.digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException("SHA-256 is not available", e); // every java platform is required to support it
+            }
+        }
+
+        public void append(String line) {
+            this.text.append(line).append('\n');
+            this.digest.update(line.getBytes(StandardCharsets.UTF_8));
+            this.digest.update((byte) '\n');
+        }
+    }
+
     static class Value<T> extends ManualObject {
         public final ValueType<T> type;
         public T value;
         public Section parent;
+        // last conversion of the value to another type, kept so reading it as that type again is a field access
+        private ValueType<?> convertedType;
+        private Object convertedFrom;
+        private Object converted;
+        // text the value was read from, written back as long as the value is not set to something else
+        private String source;
+        private Object sourceValue;
 
         private Value(ValueType<T> type, String key, T value, List<String> comments) {
             super(key, comments);
@@ -60,12 +100,211 @@ public class AIR {
             this.value = value;
         }
 
+        /**
+         * Returns the value as the requested type, converting it if it was read as another type, or empty if it can't be converted.
+         * The value itself and its type are left untouched, so it can still be retrieved as the type it was read as.
+         */
+        public <R> Optional<R> as(ValueType<R> type) {
+            if (type == this.type) {
+                return Optional.of((R) this.value);
+            }
+            if (type != this.convertedType || this.convertedFrom != this.value) { // not converted yet, or the value was set since
+                Optional<R> converted = type.convert(this.type, this.value);
+                if (!converted.isPresent()) {
+                    return Optional.empty();
+                }
+                this.convertedType = type;
+                this.convertedFrom = this.value;
+                this.converted = converted.get();
+            }
+            return Optional.of((R) this.converted);
+        }
+
+        private Value<T> read(String source) {
+            this.source = source;
+            this.sourceValue = this.value;
+            return this;
+        }
+
+        private boolean isRead() {
+            return this.source != null && Objects.equals(this.value, this.sourceValue);
+        }
+
         public String serialize() {
             if (this.type == null) {
                 throw new RuntimeException("Cannot serialize unknown value");
             }
+            if (this.isRead()) {
+                return this.source;
+            }
             return this.type.serialize(this.value);
         }
+
+        public void serialize(Writer writer) throws IOException {
+            if (this.type == null) {
+                throw new RuntimeException("Cannot serialize unknown value");
+            }
+            if (this.isRead()) {
+                writer.write(this.source);
+                return;
+            }
+            this.type.serialize(this.value, writer);
+        }
+    }
+
+    /**
+     * List read from a configuration. Items are not copied, only their offsets into the text of the section they were
+     * read from are kept, and they are decoded when they are accessed.
+     */
+    private static class ParsedList extends AbstractList<Value<?>> {
+        private final String key;
+        private final StringBuilder source; // text of the section, one trimmed line per item
+        private final List<ValueType<?>> types; // types registered when it was read, so items always decode the same way
+        private int[] starts = new int[16];
+        private int size;
+
+        private ParsedList(String key, StringBuilder source, List<ValueType<?>> types) {
+            this.key = key;
+            this.source = source;
+            this.types = types;
+        }
+
+        public void addOffset(int start) {
+            if (this.size == this.starts.length) {
+                this.starts = Arrays.copyOf(this.starts, this.size * 2);
+            }
+            this.starts[this.size++] = start;
+        }
+
+        public void trim() {
+            this.starts = Arrays.copyOf(this.starts, this.size);
+        }
+
+        @Override
+        public Value<?> get(int index) {
+            if (index < 0 || index >= this.size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size);
+            }
+            int start = this.starts[index];
+            int end = this.source.indexOf("\n", start);
+            if (this.source.charAt(end - 1) == ',') {
+                end--;
+            }
+            String item = this.source.substring(start, end);
+            for (ValueType<?> valueType : this.types) {
+                Optional<?> possible = valueType.apply(item);
+                if (possible.isPresent()) {
+                    return new Value(valueType, this.key, possible.get(), Collections.emptyList()).read(item);
+                }
+            }
+            throw InvalidConfigurationException.forLine("Invalid configuration: unknown type", item);
+        }
+
+        @Override
+        public int size() {
+            return this.size;
+        }
+
+        @Override
+        public String toString() {
+            return "[...]"; // used in error messages, don't decode every item for them
+        }
+    }
+
+    /**
+     * List set from a source which is iterated every time the list is, so its items never have to be held all at once.
+     * A list set from a stream can only be saved, once, after which the stream is closed. It can't be read, since that
+     * would use up the stream before it is saved.
+     */
+    private static class SuppliedList<T> extends AbstractList<Value<?>> implements Closeable {
+        private final ValueType<T> type;
+        private final Supplier<? extends Iterator<T>> source;
+        private final Stream<T> stream; // null unless the list was set from a stream
+        public boolean consumed;
+
+        private SuppliedList(ValueType<T> type, Supplier<? extends Iterator<T>> source, Stream<T> stream) {
+            this.type = type;
+            this.source = source;
+            this.stream = stream;
+        }
+
+        private void checkReadable() {
+            if (this.stream != null) {
+                throw new IllegalStateException("List was set from a stream, which can only be saved");
+            }
+        }
+
+        @Override
+        public Iterator<Value<?>> iterator() {
+            if (this.consumed) {
+                throw new IllegalStateException("List has already been saved from its stream, which can only be done once");
+            }
+            if (this.stream != null) {
+                this.consumed = true;
+            }
+            Iterator<T> iterator = this.source.get();
+            return new Iterator<Value<?>>() {
+                @Override
+                public boolean hasNext() {
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public Value<?> next() {
+                    return new Value<>(SuppliedList.this.type, null, iterator.next(), Collections.emptyList());
+                }
+            };
+        }
+
+        @Override
+        public Value<?> get(int index) {
+            this.checkReadable();
+            if (index < 0) {
+                throw new IndexOutOfBoundsException("Index: " + index);
+            }
+            Iterator<Value<?>> iterator = this.iterator();
+            for (int i = 0; i < index && iterator.hasNext(); i++) {
+                iterator.next();
+            }
+            if (!iterator.hasNext()) {
+                throw new IndexOutOfBoundsException("Index: " + index);
+            }
+            return iterator.next();
+        }
+
+        @Override
+        public int size() {
+            this.checkReadable();
+            int size = 0;
+            for (Iterator<Value<?>> iterator = this.iterator(); iterator.hasNext(); iterator.next()) {
+                size++;
+            }
+            return size;
+        }
+
+        // the source is only gone through when the list is read or saved, not when it is compared or printed
+
+        @Override
+        public boolean equals(Object o) {
+            return this == o;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(this);
+        }
+
+        @Override
+        public String toString() {
+            return "[...]";
+        }
+
+        @Override
+        public void close() {
+            if (this.stream != null) {
+                this.stream.close(); // release whatever backs the stream, e.g. Files.lines
+            }
+        }
     }
 
     public static class InvalidConfigurationException extends IllegalArgumentException /* for backwards-compatibility in case somebody is try/catching IllegalArgumentException */{
@@ -155,11 +394,24 @@ public class AIR {
     public AIR(){}
 
     public AIR(InputStream stream) throws IOException {
+        this.reload(stream);
+    }
+
+    /**
+     * Reads a new version of the configuration, replacing the sections currently held.
+     * <p>
+     * Every section is fingerprinted by the text between its header and the next one (including the comments above it).
+     * Sections whose fingerprint did not change since they were last read, and which were not changed in memory since,
+     * are kept as they are, so only the sections which were edited are parsed again. The result is always the same as
+     * reading the new configuration from scratch.
+     * If the new configuration is invalid, nothing is replaced.
+     */
+    public void reload(InputStream stream) throws IOException {
+        Map<String, Section> loaded = new LinkedHashMap<>();
+        List<ValueType<?>> types = new ArrayList<>(ValueType.values); // the same types for the whole configuration, even if more are registered meanwhile
         try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream))) {
-            Section currentSection = null;
-            List<String> currentComment = new ArrayList<>();
-            String listKey = null;
-            List<Object> currentList = null;
+            SectionSource source = new SectionSource();
+            List<String> pendingComments = new ArrayList<>();
 
             String line;
             while ((line = reader.readLine()) != null) {
@@ -170,88 +422,169 @@ public class AIR {
                 }
 
                 if (line.startsWith("#")) {
-                    currentComment.add(line.substring(1).trim());
-                } else if (line.startsWith("[")) {
-                    if (!line.endsWith("]")) {
-                        throw InvalidConfigurationException.forLine("Invalid configuration: section identifier does not end with ]", line);
-                    }
-                    if (line.length() < 3) {
-                        throw InvalidConfigurationException.forLine("Invalid configuration: section identifier does not have a name", line);
-                    }
-                    String sectionName = line.substring(1, line.length() - 1);
-                    Section newSection = new Section(sectionName, currentComment);
-                    currentComment = new ArrayList<>();
-                    currentSection = newSection;
-                    this.sections.put(sectionName, newSection);
-                } else {
-                    if (currentSection == null) {
-                        throw InvalidConfigurationException.forLine("Invalid configuration: found value outside of section", line);
-                    }
-                    String key;
-                    String value;
+                    pendingComments.add(line); // comments belong to whatever comes after them, which may be the next section
+                    continue;
+                }
+                if (line.startsWith("[")) {
+                    this.loadSection(source, loaded, types);
+                    source = new SectionSource();
+                }
+                for (String comment : pendingComments) {
+                    source.append(comment);
+                }
+                pendingComments.clear();
+                source.append(line);
+            }
+            this.loadSection(source, loaded, types);
+        }
+        // only update the index for sections which were removed or added
+        for (String name : this.sections.keySet()) {
+            if (!loaded.containsKey(name)) {
+                this.sectionIndex.remove(name);
+            }
+        }
+        for (String name : loaded.keySet()) {
+            if (!this.sections.containsKey(name)) {
+                this.sectionIndex.add(name);
+            }
+        }
+        this.sections.clear();
+        this.sections.putAll(loaded);
+    }
 
-                    if (currentList == null) {
-                        int equals = line.indexOf("=");
-                        if (equals <= 1 || equals == line.length() - 1) {
-                            throw InvalidConfigurationException.forLine("Invalid configuration: assignment invalid", line);
-                        }
+    private void loadSection(SectionSource source, Map<String, Section> loaded, List<ValueType<?>> types) {
+        StringBuilder text = source.text;
+        if (text.length() == 0) {
+            return;
+        }
+        byte[] fingerprint = source.digest.digest();
+
+        List<String> currentComment = new ArrayList<>();
+        int from = 0;
+        int end = text.indexOf("\n");
+        String header = text.substring(from, end);
+        while (header.startsWith("#")) {
+            currentComment.add(header.substring(1).trim());
+            from = end + 1;
+            end = text.indexOf("\n", from);
+            header = text.substring(from, end);
+        }
 
-                        key = line.substring(0, equals).trim();
-                        value = line.substring(equals + 1).trim();
+        if (!header.startsWith("[")) {
+            throw InvalidConfigurationException.forLine("Invalid configuration: found value outside of section", header);
+        }
+        if (!header.endsWith("]")) {
+            throw InvalidConfigurationException.forLine("Invalid configuration: section identifier does not end with ]", header);
+        }
+        if (header.length() < 3) {
+            throw InvalidConfigurationException.forLine("Invalid configuration: section identifier does not have a name", header);
+        }
+        String sectionName = header.substring(1, header.length() - 1);
 
-                        if (value.length() == 0) {
-                            throw InvalidConfigurationException.forValue("Invalid configuration: value does not exist", currentSection.key + "." + key, null);
-                        }
-                        if (value.equals("[")) {
-                            // start reading list
-                            listKey = key;
-                            currentList = new ArrayList<>();
-                            continue;
-                        }
+        Section previous = this.sections.get(sectionName);
+        if (previous != null && Arrays.equals(previous.fingerprint, fingerprint) && types.equals(previous.types)) {
+            loaded.put(sectionName, previous); // unchanged, keep the section and its values
+            return;
+        }
 
-                    } else {
-                        key = null;
-                        value = line.trim();
-
-                        if (value.equals("]")) {
-                            currentSection.add(listKey, new Value(ValueType.LIST, listKey, currentList, currentComment));
-                            currentList = null;
-                            listKey = null;
-                            continue;
-                        }
+        Section currentSection = new Section(sectionName, currentComment);
+        currentSection.fingerprint = fingerprint;
+        currentSection.types = types;
+        currentComment = new ArrayList<>();
+        loaded.put(sectionName, currentSection);
 
-                        if (value.endsWith(",")) {
-                            value = value.substring(0, value.length() - 1);
-                        }
-                    }
+        String listKey = null;
+        ParsedList currentList = null;
+        boolean hasList = false;
 
-                    boolean found = false;
-                    for (ValueType<?> valueType : ValueType.values) {
-                        Optional<?> possible = valueType.apply(value);
-                        if (possible.isPresent()) {
-                            found = true;
-
-                            if (currentList == null) {
-                                currentSection.add(key, new Value(valueType, key, possible.get(), currentComment));
-                            } else {
-                                currentList.add(new Value(valueType, listKey, possible.get(), Collections.emptyList()));
-                            }
-                            break;
-                        }
-                    }
-                    if (!found) {
-                        throw currentList == null
-                              ? InvalidConfigurationException.forValue("Invalid configuration: unknown type", currentSection.key + "." + key, value)
-                              : InvalidConfigurationException.forLine("Invalid configuration: unknown type", line);
-                    }
+        for (from = end + 1; (end = text.indexOf("\n", from)) != -1; from = end + 1) {
+            String line = text.substring(from, end);
+
+            if (line.startsWith("#")) {
+                currentComment.add(line.substring(1).trim());
+                continue;
+            }
+
+            String key;
+            String value;
 
-                    currentComment = new ArrayList<>();
+            if (currentList == null) {
+                int equals = line.indexOf("=");
+                if (equals <= 1 || equals == line.length() - 1) {
+                    throw InvalidConfigurationException.forLine("Invalid configuration: assignment invalid", line);
+                }
+
+                key = line.substring(0, equals).trim();
+                value = line.substring(equals + 1).trim();
+
+                if (value.length() == 0) {
+                    throw InvalidConfigurationException.forValue("Invalid configuration: value does not exist", currentSection.key + "." + key, null);
+                }
+                if (value.equals("[")) {
+                    // start reading list
+                    listKey = key;
+                    currentList = new ParsedList(key, text, types);
+                    hasList = true;
+                    continue;
+                }
+
+            } else {
+                key = null;
+                value = line;
+
+                if (value.equals("]")) {
+                    currentList.trim();
+                    currentSection.add(listKey, new Value(ValueType.LIST, listKey, currentList, currentComment));
+                    currentList = null;
+                    listKey = null;
+                    continue;
+                }
+
+                if (value.endsWith(",")) {
+                    value = value.substring(0, value.length() - 1);
+                }
+            }
+
+            boolean found = false;
+            for (ValueType<?> valueType : types) {
+                Optional<?> possible = valueType.apply(value);
+                if (possible.isPresent()) {
+                    found = true;
+
+                    if (currentList == null) {
+                        currentSection.add(key, new Value(valueType, key, possible.get(), currentComment).read(value));
+                    } else {
+                        currentList.addOffset(from); // only the position is kept, the value is decoded again when it is read
+                    }
+                    break;
                 }
             }
+            if (!found) {
+                throw currentList == null
+                      ? InvalidConfigurationException.forValue("Invalid configuration: unknown type", currentSection.key + "." + key, value)
+                      : InvalidConfigurationException.forLine("Invalid configuration: unknown type", line);
+            }
+
+            currentComment = new ArrayList<>();
+        }
+
+        if (currentList != null) {
+            throw InvalidConfigurationException.forLine("Invalid configuration: list does not end with ]", listKey + " = [");
+        }
+        if (hasList) {
+            text.trimToSize(); // the lists read from it keep the text, don't keep the spare capacity with it
         }
     }
 
     public void save(OutputStream stream) throws IOException {
+        // check before writing anything, failing halfway through would leave a truncated configuration
+        for (Section section : this.sections.values()) {
+            for (Value<?> value : section.values.values()) {
+                if (value.value instanceof SuppliedList && ((SuppliedList<?>) value.value).consumed) {
+                    throw new IllegalStateException("Cannot save " + section.key + "." + value.key + ", its list was set from a stream which has already been read");
+                }
+            }
+        }
         try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(stream))) {
             for (Map.Entry<String, Section> entry : this.sections.entrySet()) {
                 Section section = entry.getValue();
@@ -267,7 +600,9 @@ public class AIR {
                             writer.write("  # " + comment + "\n");
                         }
                     }
-                    writer.write("  " + value.key + " = " + value.serialize() + "\n");
+                    writer.write("  " + value.key + " = ");
+                    value.serialize(writer);
+                    writer.write("\n");
                 }
                 writer.write("\n");
             }
@@ -277,38 +612,92 @@ public class AIR {
     private ManualObject getObject(ValueType<?> type, String key) {
         String[] split = key.split("\\.", 2);
         if (split.length == 1) {
-            return this.sections.computeIfAbsent(key, k -> new Section(k, null));
+            return this.getSection(key);
+        }
+        Section section = this.getSection(split[0]);
+        section.changed();
+        Value<?> existing = section.values.get(split[1]);
+        if (existing != null && existing.type != type && existing.as(type).isPresent()) {
+            // it was read as another type which converts to this one, so it is replaced by a value of this type
+            section.add(split[1], new Value<>(type, split[1], null, existing.comments));
         }
-        return this.sections.computeIfAbsent(split[0], k -> new Section(k, null)).get(split[1], type);
+        return section.get(split[1], type);
+    }
+
+    private Section getSection(String name) {
+        return this.sections.computeIfAbsent(name, k -> {
+            this.sectionIndex.add(k);
+            return new Section(k, null);
+        });
+    }
+
+    /**
+     * Returns a copy of the names of all sections, in the order they are saved in.
+     */
+    public List<String> getSections() {
+        return new ArrayList<>(this.sections.keySet());
+    }
+
+    /**
+     * Returns a copy of the names of all sections starting with the prefix, sorted by name.
+     * The configuration can be changed while going through them, e.g. by retrieving values from new sections.
+     */
+    public List<String> getSections(String prefix) {
+        int last = prefix.length() - 1;
+        while (last >= 0 && prefix.charAt(last) == Character.MAX_VALUE) {
+            last--;
+        }
+        if (last < 0) { // nothing can come after the prefix, so every name from it onwards starts with it
+            return new ArrayList<>(this.sectionIndex.tailSet(prefix, true));
+        }
+        String end = prefix.substring(0, last) + (char) (prefix.charAt(last) + 1); // first name after every name starting with the prefix
+        return new ArrayList<>(this.sectionIndex.subSet(prefix, true, end, false));
+    }
+
+    /**
+     * Returns a copy of the keys of all values in a section, in the order they are saved in, or an empty list if the section does not exist.
+     */
+    public List<String> getKeys(String section) {
+        Section object = this.sections.get(section);
+        if (object == null) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(object.values.keySet());
     }
 
     public void setComment(String key, String... comment) {
         String[] split = key.split("\\.", 2);
-        ManualObject object = this.sections.computeIfAbsent(split[0], v -> new Section(split[0], null));
+        Section object = this.getSection(split[0]);
+        object.changed();
         object.comments.clear();
         object.comments.addAll(Arrays.asList(comment));
     }
 
-    private <T> T get(ValueType<T> type, String key, T defaultValue, String... comment) {
+    /**
+     * Retrieves a value of any type, including custom ones.
+     */
+    public <T> T get(ValueType<T> type, String key, T defaultValue, String... comment) {
         String[] split = key.split("\\.", 2);
         if (split.length == 1) {
             throw new IllegalArgumentException("Key '" + key + "' does not include section");
         }
-        Section section = this.sections.computeIfAbsent(split[0], k -> new Section(k, null));
+        Section section = this.getSection(split[0]);
         if (!section.values.containsKey(split[1])) {
             Value value = section.get(split[1], type);
             value.value = defaultValue;
             value.comments.addAll(Arrays.asList(comment));
             return defaultValue;
         }
-        Value value = section.get(split[1], type);
-        if (value.type != type) {
+        Value<?> value = section.values.get(split[1]);
+        Optional<T> converted = value.as(type);
+        if (!converted.isPresent()) {
             throw InvalidConfigurationException.forValue("Failed to retrieve '" + key + "' because it already exists with type " + value.type + " when requested type is " + type, key, value.value);
         }
-        if (value.comments.isEmpty()) {
+        if (value.comments.isEmpty() && comment.length > 0) {
             value.comments.addAll(Arrays.asList(comment));
+            section.changed();
         }
-        return (T) value.value;
+        return converted.get();
     }
 
     public boolean getBoolean(String key, boolean defaultValue, String... comment) {
@@ -327,12 +716,28 @@ public class AIR {
         return this.get(ValueType.STRING, key, defaultValue, comment);
     }
 
+    public long getLong(String key, long defaultValue, String... comment) {
+        return this.get(ValueType.LONG, key, defaultValue, comment);
+    }
+
+    public long getDuration(String key, long defaultValue, TimeUnit unit, String... comment) {
+        return unit.convert(this.get(ValueType.DURATION, key, unit.toNanos(defaultValue), comment), TimeUnit.NANOSECONDS);
+    }
+
+    public long getByteSize(String key, long defaultValue, String... comment) {
+        return this.get(ValueType.BYTE_SIZE, key, defaultValue, comment);
+    }
+
+    public <E extends Enum<E>> E getEnum(String key, Class<E> type, E defaultValue, String... comment) {
+        return this.get(ValueType.forEnum(type), key, defaultValue, comment);
+    }
+
     public <T> List<T> getList(String key, ValueType<T> type, List<T> defaultValue, String... comment) throws IOException /* unnecessary, but a breaking change if removed */ {
         String[] split = key.split("\\.", 2);
         if (split.length == 1) {
             throw new IllegalArgumentException("Key '" + key + "' does not include section");
         }
-        Section section = this.sections.computeIfAbsent(split[0], k -> new Section(k, null));
+        Section section = this.getSection(split[0]);
         if (!section.values.containsKey(split[1])) {
             Value<List<AIR.Value<?>>> value = section.get(split[1], ValueType.LIST);
             value.value = defaultValue.stream().map(val -> new Value<>(type, null, val, null)).collect(Collectors.toList());
@@ -340,16 +745,59 @@ public class AIR {
             return defaultValue;
         }
         Value<List<AIR.Value<?>>> value = section.get(split[1], ValueType.LIST);
-        if (value.comments.isEmpty()) {
+        if (value.comments.isEmpty() && comment.length > 0) {
             value.comments.addAll(Arrays.asList(comment));
+            section.changed();
         }
-        List<Value<?>> list = value.value;
-        for (Value<?> val : list) {
-            if (val.type != type) {
-                throw InvalidConfigurationException.forList("Found invalid type " + val.type + " when looking for " + type, key, val);
+        checkReadable(value.value);
+        List<T> list = new ArrayList<>();
+        for (Value<?> val : value.value) { // items may be decoded as they are iterated, so only go through them once
+            list.add(getListItem(type, key, val));
+        }
+        return list;
+    }
+
+    /**
+     * Returns an iterator which decodes the items of a list one at a time, without retrieving the whole list.
+     * Unlike {@link #getList}, nothing is added to the configuration if the list does not exist.
+     */
+    public <T> Iterator<T> iterateList(String key, ValueType<T> type) {
+        String[] split = key.split("\\.", 2);
+        if (split.length == 1) {
+            throw new IllegalArgumentException("Key '" + key + "' does not include section");
+        }
+        Section section = this.sections.get(split[0]);
+        if (section == null || !section.values.containsKey(split[1])) {
+            return Collections.emptyIterator();
+        }
+        List<Value<?>> values = section.get(split[1], ValueType.LIST).value;
+        checkReadable(values);
+        Iterator<Value<?>> iterator = values.iterator();
+        return new Iterator<T>() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public T next() {
+                return getListItem(type, key, iterator.next());
             }
+        };
+    }
+
+    private static void checkReadable(List<Value<?>> list) {
+        if (list instanceof SuppliedList) {
+            ((SuppliedList<?>) list).checkReadable();
+        }
+    }
+
+    private static <T> T getListItem(ValueType<T> type, String key, Value<?> val) {
+        Optional<T> converted = val.as(type);
+        if (!converted.isPresent()) {
+            throw InvalidConfigurationException.forList("Found invalid type " + val.type + " when looking for " + type, key, val);
         }
-        return list.stream().map(val -> (T) val.value).collect(Collectors.toList());
+        return converted.get();
     }
 
     public <T> void setList(ValueType<T> listType, String key, List<T> value) {
@@ -360,6 +808,32 @@ public class AIR {
         ((Value<List<Value<T>>>) object).value = value.stream().map(val -> new Value<T>(listType, null, val, null)).collect(Collectors.toList());
     }
 
+    /**
+     * Sets a list whose items are taken from the source every time it is read or saved, one at a time.
+     * The source should return a new iterator every time it is called.
+     */
+    public <T> void setList(ValueType<T> listType, String key, Supplier<? extends Iterator<T>> source) {
+        ManualObject object = getObject(ValueType.LIST, key);
+        if (!(object instanceof Value)) {
+            throw new IllegalArgumentException("Invalid key for value " + key);
+        }
+        ((Value<List<Value<?>>>) object).value = new SuppliedList<>(listType, source, null);
+    }
+
+    /**
+     * Sets a list whose items are taken from the stream when it is saved, after which the stream is closed.
+     * A stream can only be consumed once, so the list can't be retrieved and can only be saved once. Use
+     * {@link #setList(ValueType, String, Supplier)} if the list is needed more than once.
+     * Saving again after the stream was consumed throws an {@link IllegalStateException} before anything is written.
+     */
+    public <T> void setList(ValueType<T> listType, String key, Stream<T> source) {
+        ManualObject object = getObject(ValueType.LIST, key);
+        if (!(object instanceof Value)) {
+            throw new IllegalArgumentException("Invalid key for value " + key);
+        }
+        ((Value<List<Value<?>>>) object).value = new SuppliedList<>(listType, source::iterator, source);
+    }
+
     public <T> void set(ValueType<T> type, String key, T value) {
         ManualObject object = getObject(type, key);
         if (!(object instanceof Value)) {
@@ -371,18 +845,30 @@ public class AIR {
     public void merge(AIR defaults) {
         for (final Map.Entry<String, Section> defaultSection : defaults.sections.entrySet()) { // loop through default values
             Section section = this.sections.computeIfAbsent(defaultSection.getKey(), k -> defaultSection.getValue()); // merge sections
-            if (section.comments.isEmpty()) { // copy over the comments for the section, if necessary
+            this.sectionIndex.add(defaultSection.getKey());
+            boolean changed = section == defaultSection.getValue(); // taken from the defaults, it wasn't read from this configuration
+            if (section.comments.isEmpty() && !defaultSection.getValue().comments.isEmpty()) { // copy over the comments for the section, if necessary
                 section.comments.addAll(defaultSection.getValue().comments);
+                changed = true;
             }
             for (final Map.Entry<String, Value<?>> defaultValue : defaultSection.getValue().values.entrySet()) {
-                Value<?> value = section.values.computeIfAbsent(defaultValue.getKey(), k -> defaultValue.getValue()); // merge values
-                if(value.type != defaultValue.getValue().type){ // fix type difference (defaults take priority for type, but not value)
+                Value<?> value = section.values.get(defaultValue.getKey());
+                if (value == null) { // merge values
+                    value = defaultValue.getValue();
+                    section.values.put(defaultValue.getKey(), value);
+                    changed = true;
+                } else if(!value.as(defaultValue.getValue().type).isPresent()){ // fix type difference (defaults take priority for type, but not value, unless it can be converted)
                     section.values.put(defaultValue.getKey(), defaultValue.getValue());
+                    changed = true;
                 }
-                if (value.comments.isEmpty()) { // copy over the comments for the value, if necessary
+                if (value.comments.isEmpty() && !defaultValue.getValue().comments.isEmpty()) { // copy over the comments for the value, if necessary
                     value.comments.addAll(defaultValue.getValue().comments);
+                    changed = true;
                 }
             }
+            if (changed) {
+                section.changed();
+            }
         }
     }
 
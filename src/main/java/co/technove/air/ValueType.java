@@ -1,16 +1,40 @@
 package co.technove.air;
 
-import java.util.ArrayList;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 
 public abstract class ValueType<T> {
 
-    private static final List<ValueType<?>> internalValues = new ArrayList<>();
+    private static final CopyOnWriteArrayList<ValueType<?>> internalValues = new CopyOnWriteArrayList<>(); // types can be registered while parsing
     public static final List<ValueType<?>> values = Collections.unmodifiableList(internalValues);
+    // stored on the enum class itself, so it doesn't keep classes (and their class loaders) from being unloaded
+    private static final ClassValue<ValueType<?>> enumValues = new ClassValue<ValueType<?>>() {
+        @Override
+        protected ValueType<?> computeValue(Class<?> type) {
+            return createEnum((Class) type);
+        }
+    };
 
-    public static final ValueType<Boolean> BOOL = new ValueType<Boolean>("BOOL") {
+    private static final String[] DURATION_UNITS = {"d", "h", "m", "s", "ms", "us", "ns"};
+    private static final long[] DURATION_NANOS = {
+            TimeUnit.DAYS.toNanos(1),
+            TimeUnit.HOURS.toNanos(1),
+            TimeUnit.MINUTES.toNanos(1),
+            TimeUnit.SECONDS.toNanos(1),
+            TimeUnit.MILLISECONDS.toNanos(1),
+            TimeUnit.MICROSECONDS.toNanos(1),
+            1
+    };
+    private static final String[] BYTE_SIZE_UNITS = {"TB", "GB", "MB", "KB", "B"};
+    private static final long[] BYTE_SIZE_BYTES = {1L << 40, 1L << 30, 1L << 20, 1L << 10, 1};
+
+    public static final ValueType<Boolean> BOOL = new ValueType<Boolean>("BOOL", true) {
         @Override
         public Optional<Boolean> apply(String str) {
             if (str.equalsIgnoreCase("true") || str.equalsIgnoreCase("false")) {
@@ -24,11 +48,15 @@ public abstract class ValueType<T> {
             return Boolean.toString(value);
         }
     };
-    public static final ValueType<Integer> INT = new ValueType<Integer>("INT") {
+    public static final ValueType<Integer> INT = new ValueType<Integer>("INT", true) {
         @Override
         public Optional<Integer> apply(String str) {
             if ((((str.charAt(0) == '\u002d' /* - */ || str.charAt(0) == '\u002b' /* + */) && Character.isDigit(str.charAt(1))) || Character.isDigit(str.charAt(0))) && !str.contains(".")) {
-                return Optional.of(Integer.parseInt(str));
+                try {
+                    return Optional.of(Integer.parseInt(str));
+                } catch (NumberFormatException e) {
+                    return Optional.empty(); // too large, or a number with a unit
+                }
             }
             return Optional.empty();
         }
@@ -38,11 +66,15 @@ public abstract class ValueType<T> {
             return value.toString();
         }
     };
-    public static final ValueType<Double> DOUBLE = new ValueType<Double>("DOUBLE") {
+    public static final ValueType<Double> DOUBLE = new ValueType<Double>("DOUBLE", true) {
         @Override
         public Optional<Double> apply(String str) {
             if ((((str.charAt(0) == '\u002d' /* - */ || str.charAt(0) == '\u002b' /* + */) && Character.isDigit(str.charAt(1))) || Character.isDigit(str.charAt(0))) && str.contains(".")) {
-                return Optional.of(Double.parseDouble(str));
+                try {
+                    return Optional.of(Double.parseDouble(str));
+                } catch (NumberFormatException e) {
+                    return Optional.empty();
+                }
             }
             return Optional.empty();
         }
@@ -52,7 +84,7 @@ public abstract class ValueType<T> {
             return value.toString();
         }
     };
-    public static final ValueType<String> STRING = new ValueType<String>("STRING") {
+    public static final ValueType<String> STRING = new ValueType<String>("STRING", true) {
         @Override
         public Optional<String> apply(String str) {
             if (str.length() >= 2 && str.startsWith("\"")) {
@@ -69,7 +101,7 @@ public abstract class ValueType<T> {
             return "\"" + value + "\"";
         }
     };
-    public static final ValueType<List<AIR.Value<?>>> LIST = new ValueType<List<AIR.Value<?>>>("LIST") {
+    public static final ValueType<List<AIR.Value<?>>> LIST = new ValueType<List<AIR.Value<?>>>("LIST", true) {
         @Override
         public Optional<List<AIR.Value<?>>> apply(String str) {
             return Optional.empty();
@@ -84,14 +116,183 @@ public abstract class ValueType<T> {
             builder.append("  ]");
             return builder.toString();
         }
+
+        @Override
+        public void serialize(List<AIR.Value<?>> values, Writer writer) throws IOException {
+            writer.write("[\n");
+            try {
+                for (AIR.Value<?> value : values) {
+                    writer.write("    ");
+                    value.serialize(writer);
+                    writer.write(",\n");
+                }
+            } finally {
+                if (values instanceof Closeable) { // lists set from a stream, which is closed even if writing fails
+                    ((Closeable) values).close();
+                }
+            }
+            writer.write("  ]");
+        }
+    };
+    // only numbers which are too large for INT are read as LONG, smaller ones are converted when requested
+    public static final ValueType<Long> LONG = new ValueType<Long>("LONG", true) {
+        @Override
+        public Optional<Long> apply(String str) {
+            if ((((str.charAt(0) == '\u002d' /* - */ || str.charAt(0) == '\u002b' /* + */) && Character.isDigit(str.charAt(1))) || Character.isDigit(str.charAt(0))) && !str.contains(".")) {
+                try {
+                    return Optional.of(Long.parseLong(str));
+                } catch (NumberFormatException e) {
+                    return Optional.empty();
+                }
+            }
+            return Optional.empty();
+        }
+
+        @Override
+        public String serialize(Long value) {
+            return value.toString();
+        }
+
+        @Override
+        protected Optional<Long> convert(ValueType<?> type, Object value) {
+            return type == INT ? Optional.of(((Integer) value).longValue()) : Optional.empty();
+        }
+    };
+    // stored in nanoseconds, written as e.g. 30s or 1500ms
+    public static final ValueType<Long> DURATION = new ValueType<Long>("DURATION", true) {
+        @Override
+        public Optional<Long> apply(String str) {
+            return parseAmount(str, DURATION_UNITS, DURATION_NANOS, false, true);
+        }
+
+        @Override
+        public String serialize(Long value) {
+            return serializeAmount(value, DURATION_UNITS, DURATION_NANOS);
+        }
+
+        @Override
+        protected Optional<Long> convert(ValueType<?> type, Object value) {
+            return type == STRING ? this.apply((String) value) : Optional.empty();
+        }
+    };
+    // stored in bytes, written as e.g. 512MB, units are powers of 1024
+    public static final ValueType<Long> BYTE_SIZE = new ValueType<Long>("BYTE_SIZE", true) {
+        @Override
+        public Optional<Long> apply(String str) {
+            return parseAmount(str, BYTE_SIZE_UNITS, BYTE_SIZE_BYTES, true, false);
+        }
+
+        @Override
+        public String serialize(Long value) {
+            return serializeAmount(value, BYTE_SIZE_UNITS, BYTE_SIZE_BYTES);
+        }
+
+        @Override
+        protected Optional<Long> convert(ValueType<?> type, Object value) {
+            return type == STRING ? this.apply((String) value) : Optional.empty();
+        }
     };
 
     private final String name;
+    private final boolean builtIn;
+
+    /**
+     * Creates a new type. It is only tried when parsing once it is {@link #register registered}.
+     */
+    protected ValueType(String name) {
+        this.name = name;
+        this.builtIn = false;
+    }
 
-    private ValueType(String name) {
+    private ValueType(String name, boolean register) {
         this.name = name;
+        this.builtIn = true;
+
+        if (register) {
+            internalValues.add(this);
+        }
+    }
+
+    /**
+     * Registers a type, so values which do not match any type registered before it are tried against it when parsing.
+     * Types stay registered until they are {@link #unregister unregistered}, which should be done before the code
+     * that defines them is unloaded. Configurations which are already loaded keep using the types registered when
+     * they were loaded.
+     */
+    public static void register(ValueType<?> type) {
+        internalValues.addIfAbsent(type);
+    }
+
+    public static void unregister(ValueType<?> type) {
+        if (type.builtIn) {
+            throw new IllegalArgumentException("Cannot unregister built-in type " + type);
+        }
+        internalValues.remove(type);
+    }
+
+    /**
+     * Returns the type for an enum, which is written as a string and converted to the constant when it is requested.
+     */
+    public static <E extends Enum<E>> ValueType<E> forEnum(Class<E> type) {
+        return (ValueType<E>) enumValues.get(type);
+    }
+
+    private static <E extends Enum<E>> ValueType<E> createEnum(Class<E> type) {
+        return new ValueType<E>(type.getSimpleName(), false) { // can't be told apart from a string while parsing
+            @Override
+            public Optional<E> apply(String str) {
+                for (E constant : type.getEnumConstants()) {
+                    if (constant.name().equalsIgnoreCase(str)) {
+                        return Optional.of(constant);
+                    }
+                }
+                return Optional.empty();
+            }
 
-        internalValues.add(this);
+            @Override
+            public String serialize(E value) {
+                return "\"" + value.name() + "\"";
+            }
+
+            @Override
+            protected Optional<E> convert(ValueType<?> from, Object value) {
+                return from == STRING ? this.apply((String) value) : Optional.empty();
+            }
+        };
+    }
+
+    private static Optional<Long> parseAmount(String str, String[] units, long[] multipliers, boolean ignoreCase, boolean signed) {
+        int start = signed && str.startsWith("-") ? 1 : 0;
+        int digits = start;
+        while (digits < str.length() && Character.isDigit(str.charAt(digits))) {
+            digits++;
+        }
+        if (digits == start || digits == str.length()) {
+            return Optional.empty();
+        }
+        String unit = str.substring(digits);
+        for (int i = 0; i < units.length; i++) {
+            if (ignoreCase ? units[i].equalsIgnoreCase(unit) : units[i].equals(unit)) {
+                try {
+                    return Optional.of(Math.multiplyExact(Long.parseLong(str.substring(0, digits)), multipliers[i]));
+                } catch (NumberFormatException | ArithmeticException e) {
+                    return Optional.empty(); // too large
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    private static String serializeAmount(long amount, String[] units, long[] multipliers) {
+        if (amount == 0) {
+            return "0" + units[units.length - 1];
+        }
+        for (int i = 0; i < units.length; i++) {
+            if (amount % multipliers[i] == 0) { // largest unit which represents the amount exactly
+                return amount / multipliers[i] + units[i];
+            }
+        }
+        throw new IllegalStateException("No unit for " + amount); // unreachable, the smallest unit is 1
     }
 
     @Override
@@ -103,4 +304,15 @@ public abstract class ValueType<T> {
 
     public abstract String serialize(T value);
 
+    public void serialize(T value, Writer writer) throws IOException {
+        writer.write(this.serialize(value));
+    }
+
+    /**
+     * Converts a value which was read as another type, when it is requested as this one. The result is kept alongside the original value.
+     */
+    protected Optional<T> convert(ValueType<?> type, Object value) {
+        return Optional.empty();
+    }
+
 }
@@ -10,9 +10,14 @@ import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Optional;
 import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 // todo way more comment & section tests
 public class AIRTest {
@@ -149,6 +154,273 @@ public class AIRTest {
           "\n");
     }
 
+	@Test
+	public void streamedListWriteTest() throws IOException {
+		AIR parser = new AIR();
+
+		parser.setList(ValueType.INT, "lists.list1", () -> IntStream.rangeClosed(1, 3).iterator());
+		parser.setList(ValueType.STRING, "lists.list2", Stream.of("foo", "bar"));
+
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		parser.save(outputStream);
+		String out = outputStream.toString(StandardCharsets.UTF_8.name());
+		Assertions.assertEquals(out, "[lists]\n" +
+		  "  list1 = [\n" +
+		  "    1,\n" +
+		  "    2,\n" +
+		  "    3,\n" +
+		  "  ]\n" +
+		  "  list2 = [\n" +
+		  "    \"foo\",\n" +
+		  "    \"bar\",\n" +
+		  "  ]\n" +
+		  "\n");
+		Assertions.assertEquals(parser.getList("lists.list1", ValueType.INT, null), Arrays.asList(1, 2, 3));
+	}
+
+	@Test
+	public void streamedListSaveTwiceTest() throws IOException {
+		AIR parser = new AIR();
+
+		boolean[] closed = new boolean[1];
+		parser.setList(ValueType.INT, "lists.list", Stream.of(1, 2).onClose(() -> closed[0] = true));
+
+		parser.save(new ByteArrayOutputStream());
+		Assertions.assertTrue(closed[0]);
+
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		Assertions.assertThrows(IllegalStateException.class, () -> parser.save(outputStream));
+		Assertions.assertEquals(outputStream.size(), 0);
+	}
+
+	@Test
+	public void streamedListReadTest() throws IOException {
+		AIR parser = new AIR();
+
+		boolean[] closed = new boolean[1];
+		parser.setList(ValueType.INT, "lists.list", Stream.of(1, 2).onClose(() -> closed[0] = true));
+
+		// none of these may use up the stream
+		Assertions.assertThrows(AIR.InvalidConfigurationException.class, () -> parser.getInt("lists.list", 0));
+		Assertions.assertThrows(IllegalStateException.class, () -> parser.getList("lists.list", ValueType.INT, null));
+		Assertions.assertThrows(IllegalStateException.class, () -> parser.iterateList("lists.list", ValueType.INT));
+		Assertions.assertFalse(closed[0]);
+
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		parser.save(outputStream);
+		Assertions.assertEquals(outputStream.toString(StandardCharsets.UTF_8.name()), "[lists]\n  list = [\n    1,\n    2,\n  ]\n\n");
+		Assertions.assertTrue(closed[0]);
+	}
+
+	@Test
+	public void streamedListFailedSaveTest() {
+		AIR parser = new AIR();
+
+		boolean[] closed = new boolean[1];
+		parser.setList(ValueType.INT, "lists.list", Stream.of(1, 2).map(i -> {
+			if (i == 2) {
+				throw new IllegalArgumentException("broken source");
+			}
+			return i;
+		}).onClose(() -> closed[0] = true));
+
+		Assertions.assertThrows(IllegalArgumentException.class, () -> parser.save(new ByteArrayOutputStream()));
+		Assertions.assertTrue(closed[0]);
+	}
+
+	@Test
+	public void iterateListTest() throws IOException {
+		String contents = "[section]\n" +
+		  "val = [\n" +
+		  "1,\n" +
+		  "# skipped\n" +
+		  "2,\n" +
+		  "\"foo\",\n" +
+		  "]";
+
+		AIR parser = new AIR(new ByteArrayInputStream(contents.getBytes(StandardCharsets.UTF_8)));
+		Iterator<Integer> iterator = parser.iterateList("section.val", ValueType.INT);
+		Assertions.assertEquals(iterator.next(), 1);
+		Assertions.assertEquals(iterator.next(), 2);
+		Assertions.assertThrows(AIR.InvalidConfigurationException.class, iterator::next);
+		Assertions.assertFalse(parser.iterateList("section.missing", ValueType.INT).hasNext());
+	}
+
+	enum Mode {
+		FAST, SLOW
+	}
+
+	@Test
+	public void richTypeTest() throws IOException {
+		String contents = "[foo]\n" +
+						  "timeout = 30s\n" +
+						  "delay = \"1500ms\"\n" +
+						  "size = 512mb\n" +
+						  "wait = 120s\n" +
+						  "max = 1024KB\n" +
+						  "big = 12345678901\n" +
+						  "small = 5\n" +
+						  "mode = \"fast\"\n";
+
+		AIR parser = new AIR(new ByteArrayInputStream(contents.getBytes(StandardCharsets.UTF_8)));
+		Assertions.assertEquals(parser.getDuration("foo.timeout", 0, TimeUnit.SECONDS), 30);
+		Assertions.assertEquals(parser.getDuration("foo.delay", 0, TimeUnit.MILLISECONDS), 1500);
+		Assertions.assertEquals(parser.getByteSize("foo.size", 0), 512L * 1024 * 1024);
+		Assertions.assertEquals(parser.getDuration("foo.wait", 0, TimeUnit.MINUTES), 2);
+		parser.set(ValueType.BYTE_SIZE, "foo.max", 2048L * 1024); // set from code, written in canonical form
+		Assertions.assertEquals(parser.getLong("foo.big", 0), 12345678901L);
+		Assertions.assertEquals(parser.getLong("foo.small", 0), 5);
+		Assertions.assertEquals(parser.getEnum("foo.mode", Mode.class, Mode.SLOW), Mode.FAST);
+		Assertions.assertSame(ValueType.forEnum(Mode.class), ValueType.forEnum(Mode.class));
+		Assertions.assertEquals(parser.getDuration("foo.retry", 2, TimeUnit.MINUTES), 2);
+		Assertions.assertThrows(AIR.InvalidConfigurationException.class, () -> parser.getInt("foo.timeout", 0));
+
+		// converting doesn't change the type the value was read as
+		Assertions.assertEquals(parser.getInt("foo.small", 0), 5);
+		Assertions.assertEquals(parser.getLong("foo.small", 0), 5);
+		Assertions.assertEquals(parser.getInt("foo.small", 0), 5);
+		Assertions.assertEquals(parser.getString("foo.delay", null), "1500ms");
+		Assertions.assertEquals(parser.getString("foo.mode", null), "fast");
+
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		parser.save(outputStream);
+		String out = outputStream.toString(StandardCharsets.UTF_8.name());
+		Assertions.assertEquals(out, "[foo]\n" +
+		  "  timeout = 30s\n" +
+		  "  delay = \"1500ms\"\n" +
+		  "  size = 512mb\n" +
+		  "  wait = 120s\n" +
+		  "  max = 2MB\n" +
+		  "  big = 12345678901\n" +
+		  "  small = 5\n" +
+		  "  mode = \"fast\"\n" +
+		  "  retry = 2m\n" +
+		  "\n");
+	}
+
+	@Test
+	public void setConvertedTest() throws IOException {
+		String contents = "[foo]\n" +
+						  "# how fast\n" +
+						  "mode = \"fast\"\n" +
+						  "small = 5\n" +
+						  "delay = \"5s\"\n";
+
+		AIR parser = new AIR(new ByteArrayInputStream(contents.getBytes(StandardCharsets.UTF_8)));
+		Assertions.assertEquals(parser.getEnum("foo.mode", Mode.class, Mode.SLOW), Mode.FAST);
+		Assertions.assertEquals(parser.getLong("foo.small", 0), 5);
+		Assertions.assertEquals(parser.getDuration("foo.delay", 0, TimeUnit.SECONDS), 5);
+
+		parser.set(ValueType.forEnum(Mode.class), "foo.mode", Mode.SLOW);
+		parser.set(ValueType.LONG, "foo.small", 7L);
+		parser.set(ValueType.DURATION, "foo.delay", TimeUnit.SECONDS.toNanos(10));
+		Assertions.assertThrows(AIR.InvalidConfigurationException.class, () -> parser.set(ValueType.BOOL, "foo.small", true));
+
+		Assertions.assertEquals(parser.getEnum("foo.mode", Mode.class, Mode.FAST), Mode.SLOW);
+		Assertions.assertEquals(parser.getLong("foo.small", 0), 7);
+		Assertions.assertEquals(parser.getDuration("foo.delay", 0, TimeUnit.SECONDS), 10);
+
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		parser.save(outputStream);
+		String out = outputStream.toString(StandardCharsets.UTF_8.name());
+		Assertions.assertEquals(out, "[foo]\n" +
+		  "  # how fast\n" +
+		  "  mode = \"SLOW\"\n" +
+		  "  small = 7\n" +
+		  "  delay = 10s\n" +
+		  "\n");
+	}
+
+	// only matches values which no built-in type does
+	static final ValueType<Integer> HEX = new ValueType<Integer>("HEX") {
+		@Override
+		public Optional<Integer> apply(String str) {
+			if (str.startsWith("0x")) {
+				try {
+					return Optional.of(Integer.parseInt(str.substring(2), 16));
+				} catch (NumberFormatException e) {
+					return Optional.empty();
+				}
+			}
+			return Optional.empty();
+		}
+
+		@Override
+		public String serialize(Integer value) {
+			return "0x" + Integer.toHexString(value).toUpperCase();
+		}
+	};
+
+	@Test
+	public void customTypeTest() throws IOException {
+		String contents = "[foo]\n" +
+						  "mask = 0x1F\n" +
+						  "masks = [\n" +
+						  "0x1,\n" +
+						  "0x2,\n" +
+						  "]\n";
+
+		Assertions.assertFalse(ValueType.values.contains(HEX));
+		Assertions.assertThrows(AIR.InvalidConfigurationException.class, () -> errorTest(contents)); // not registered yet
+
+		ValueType.register(HEX);
+		AIR parser;
+		try {
+			parser = new AIR(new ByteArrayInputStream(contents.getBytes(StandardCharsets.UTF_8)));
+			Assertions.assertTrue(ValueType.values.contains(HEX));
+			Assertions.assertEquals(parser.get(HEX, "foo.mask", 0), 31);
+			Assertions.assertThrows(AIR.InvalidConfigurationException.class, () -> parser.getInt("foo.mask", 0));
+
+			parser.set(HEX, "foo.mask", 255);
+			ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+			parser.save(outputStream);
+			String out = outputStream.toString(StandardCharsets.UTF_8.name());
+			Assertions.assertEquals(out, "[foo]\n  mask = 0xFF\n  masks = [\n    0x1,\n    0x2,\n  ]\n\n");
+
+			AIR reloaded = new AIR(new ByteArrayInputStream(outputStream.toByteArray()));
+			Assertions.assertEquals(reloaded.get(HEX, "foo.mask", 0), 255);
+		} finally {
+			ValueType.unregister(HEX);
+		}
+
+		Assertions.assertFalse(ValueType.values.contains(HEX));
+		Assertions.assertThrows(IllegalArgumentException.class, () -> ValueType.unregister(ValueType.INT));
+		// already loaded lists keep decoding with the types registered when they were loaded
+		Assertions.assertEquals(parser.getList("foo.masks", HEX, null), Arrays.asList(1, 2));
+	}
+
+	@Test
+	public void listConversionTest() throws IOException {
+		String contents = "[section]\n" +
+		  "val = [\n" +
+		  "1,\n" +
+		  "12345678901,\n" +
+		  "]";
+
+		AIR parser = new AIR(new ByteArrayInputStream(contents.getBytes(StandardCharsets.UTF_8)));
+		Assertions.assertEquals(parser.getList("section.val", ValueType.LONG, null), Arrays.asList(1L, 12345678901L));
+		Assertions.assertThrows(AIR.InvalidConfigurationException.class, () -> parser.getList("section.val", ValueType.INT, null));
+	}
+
+	@Test
+	public void mergeConversionTest() throws IOException {
+		String defaults = "[foo]\n" +
+						  "timeout = 10s\n" +
+						  "count = 5\n";
+
+		String contents = "[foo]\n" +
+						  "timeout = \"30s\"\n" +
+						  "count = \"many\"\n";
+
+		AIR defaultsParser = new AIR(new ByteArrayInputStream(defaults.getBytes(StandardCharsets.UTF_8)));
+		AIR contentsParser = new AIR(new ByteArrayInputStream(contents.getBytes(StandardCharsets.UTF_8)));
+
+		contentsParser.merge(defaultsParser);
+
+		Assertions.assertEquals(contentsParser.getDuration("foo.timeout", 0, TimeUnit.SECONDS), 30); // converted, user value kept
+		Assertions.assertEquals(contentsParser.getInt("foo.count", 0), 5); // can't be converted, default takes over
+	}
+
 	@Test
 	public void mergeTest() throws IOException {
 		String defaults = "[foo]\n" +
@@ -171,6 +443,78 @@ public class AIRTest {
 		Assertions.assertEquals(contentsParser.getString("foo.qux", "nonexistent"), "nonexistent");
 	}
 
+	@Test
+	public void enumerationTest() throws IOException {
+		String contents = "[tenant-b]\n" +
+						  "id = 2\n" +
+						  "name = \"b\"\n" +
+						  "[global]\n" +
+						  "[tenant-a]\n" +
+						  "id = 1\n";
+
+		AIR parser = new AIR(new ByteArrayInputStream(contents.getBytes(StandardCharsets.UTF_8)));
+		parser.getInt("tenant-c.id", 3);
+		parser.getInt("tenants.count", 3);
+
+		Assertions.assertEquals(parser.getSections(), Arrays.asList("tenant-b", "global", "tenant-a", "tenant-c", "tenants"));
+		Assertions.assertEquals(parser.getSections("tenant-"), Arrays.asList("tenant-a", "tenant-b", "tenant-c"));
+		Assertions.assertTrue(parser.getSections("missing").isEmpty());
+		Assertions.assertEquals(parser.getKeys("tenant-b"), Arrays.asList("id", "name"));
+		Assertions.assertTrue(parser.getKeys("missing").isEmpty());
+		Assertions.assertFalse(parser.getSections().contains("missing"));
+	}
+
+	@Test
+	public void enumerationWhileChangingTest() throws IOException {
+		AIR parser = new AIR();
+		parser.getInt("t-a.k", 1);
+		parser.getInt("t-b.k", 1);
+
+		for (String section : parser.getSections("t-")) {
+			parser.getInt(section + "x.k", 1); // creates a section matching the prefix
+			parser.getInt(section + ".other", 1);
+		}
+		for (String key : parser.getKeys("t-a")) {
+			parser.getInt("t-a." + key + "2", 1);
+		}
+
+		Assertions.assertEquals(parser.getSections("t-"), Arrays.asList("t-a", "t-ax", "t-b", "t-bx"));
+		Assertions.assertEquals(parser.getKeys("t-a"), Arrays.asList("k", "other", "k2", "other2"));
+	}
+
+	@Test
+	public void reloadTest() throws IOException {
+		String contents = "[foo]\n" +
+						  "bar = 1\n" +
+						  "# Hello, World\n" +
+						  "[baz]\n" +
+						  "qux = \"before\"\n";
+
+		String updated = "[foo]\n" +
+						 "  bar = 1\n" +
+						 "\n" +
+						 "# Hello, World\n" +
+						 "[baz]\n" +
+						 "qux = \"after\"\n";
+
+		AIR parser = new AIR(new ByteArrayInputStream(contents.getBytes(StandardCharsets.UTF_8)));
+		Assertions.assertEquals(parser.getString("baz.qux", null), "before");
+		parser.set(ValueType.INT, "foo.bar", 2); // changed sections are parsed again, even if their text is the same
+		parser.getInt("foo.added", 3);
+
+		parser.reload(new ByteArrayInputStream(updated.getBytes(StandardCharsets.UTF_8)));
+		Assertions.assertEquals(parser.getKeys("foo"), Arrays.asList("bar")); // the same as parsing the file from scratch
+		Assertions.assertEquals(parser.getInt("foo.bar", 0), 1);
+		Assertions.assertEquals(parser.getString("baz.qux", null), "after");
+
+		Assertions.assertThrows(AIR.InvalidConfigurationException.class, () ->
+				parser.reload(new ByteArrayInputStream("[foo]\nbar = [\n1\n".getBytes(StandardCharsets.UTF_8))));
+		Assertions.assertEquals(parser.getString("baz.qux", null), "after");
+
+		parser.reload(new ByteArrayInputStream("[foo]\nbar = 1\n[bat]\n".getBytes(StandardCharsets.UTF_8)));
+		Assertions.assertEquals(parser.getSections("ba"), Arrays.asList("bat"));
+	}
+
 	@FunctionalInterface
 	interface Thief<T, E extends Exception> {
 		void steal(T t) throws E;
@@ -217,6 +561,13 @@ public class AIRTest {
 						  "bar = \"will retrieve an int\"", (air) -> air.getInt("foo.bar", 0)));
 	}
 
+	@Test
+	public void negativeByteSizeTest() {
+		Assertions.assertThrows(AIR.InvalidConfigurationException.class, () ->
+				errorTest("[foo]\n" +
+						  "size = -5MB"));
+	}
+
 	@Test
 	public void differentListMemberTest() {
 		Assertions.assertThrows(AIR.InvalidConfigurationException.class, () ->